@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.function.Supplier;
 
 /**
  * The methods the FXML references when actions are taken by the user.
@@ -31,9 +32,12 @@ public class Controller {
     @FXML
     private ListView<Game> gameList;
 
-    private final Downloader downloader;
+    private final Supplier<Downloader> downloader;
 
-    public Controller(Downloader downloader) {
+    /**
+     * @param downloader supplies the downloader when the first download is started, so it isn't created on startup
+     */
+    public Controller(Supplier<Downloader> downloader) {
         this.downloader = downloader;
     }
 
@@ -72,6 +76,7 @@ public class Controller {
     @FXML
     public void downloadGames() {
         try {
+            var downloader = this.downloader.get();
             try {
                 PowerManagement.INSTANCE.preventSleep();
             } catch (Exception e) {
@@ -11,21 +11,49 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class Downloader implements AutoCloseable {
 
     private static final double BYTES_IN_GIB = 1_073_741_824.0;
+    private static final double BYTES_IN_MIB = 1_048_576.0;
     private static final Logger logger = LoggerFactory.getLogger(Downloader.class);
-    private final ExecutorService executorService = Executors.newFixedThreadPool(2);
+    private static final int PARALLEL_GAMES = 2;
+    /**
+     * Files copied at the same time per game, including the game's own thread.
+     */
+    private static final int WORKERS_PER_GAME = 4;
+    private final ExecutorService executorService = Executors.newFixedThreadPool(PARALLEL_GAMES);
+    private final ExecutorService fileExecutorService = Executors.newFixedThreadPool(PARALLEL_GAMES * (WORKERS_PER_GAME - 1));
     private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+    private final ResilientFileCopier copier = new ResilientFileCopier(RetryPolicy.DEFAULT);
+    private final TransferPlanner planner = new TransferPlanner(RetryPolicy.DEFAULT);
+    private final ThroughputModel queueThroughputModel = new ThroughputModel();
+    private final Set<TransferPlan> queuedPlans = ConcurrentHashMap.newKeySet();
+    private final AtomicLong queueCopiedBytes = new AtomicLong();
+    private final AtomicLong queueCopiedFiles = new AtomicLong();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final IconStore iconStore;
+
+    /**
+     * @param iconStore where the icons shown in the download dialogs come from
+     */
+    public Downloader(IconStore iconStore) {
+        this.iconStore = iconStore;
+    }
 
     /**
      * Download a game into Path {@code to}. Create dialog to keep track of the download.
@@ -60,12 +88,14 @@ public class Downloader implements AutoCloseable {
 
         if (game.icon() != null) {
             var image = (ImageView) dialogPane.lookup("#image");
-            image.setImage(game.icon().getImage());
+            iconStore.icon(game.icon()).thenAcceptAsync(image::setImage, Platform::runLater);
         }
 
-        var visitor = new CopyFileVisitor(to);
-
-        var fromSizeFuture = CompletableFuture.supplyAsync(() -> size(from));
+        var planFuture = planner.planAsync(from, to).thenApply(plan -> {
+            queuedPlans.add(plan);
+            return plan;
+        });
+        var gameThroughputModel = new ThroughputModel();
         Instant start = Instant.now();
         AtomicBoolean done = new AtomicBoolean(false);
         AtomicBoolean started = new AtomicBoolean(false);
@@ -73,13 +103,9 @@ public class Downloader implements AutoCloseable {
         logger.debug("Schedule thread that updates dialog box");
         var progressTrackerScheduledFuture = scheduledExecutorService.scheduleAtFixedRate(
                 () -> {
-                    Long fromSize = null;
-                    try {
-                        if (fromSizeFuture.isDone()) {
-                            fromSize = fromSizeFuture.get();
-                        }
-                    } catch (InterruptedException | ExecutionException e) {
-                        logger.error("Could not calculate folder size", e);
+                    @Nullable TransferPlan plan = null;
+                    if (planFuture.isDone() && !planFuture.isCompletedExceptionally()) {
+                        plan = planFuture.join();
                     }
 
                     final String percentString;
@@ -87,13 +113,19 @@ public class Downloader implements AutoCloseable {
                     if (!started.get()) {
                         percent = 0.0d;
                         percentString = "Paused, waiting for others to complete";
-                    } else if (fromSize != null) {
-                        var size = visitor.getBytesTransferred();
-                        percent = (float) size / fromSize;
-                        double gbs = size / BYTES_IN_GIB;
-                        percentString = "%.1f%% %.2f/%.2f GB".formatted(percent * 100, gbs, fromSize / BYTES_IN_GIB);
+                    } else if (plan != null) {
+                        gameThroughputModel.sample(plan.getCopiedBytes(), plan.getCopiedFiles());
+                        queueThroughputModel.sample(queueCopiedBytes.get(), queueCopiedFiles.get());
+                        var size = plan.getDoneBytes();
+                        var totalSize = plan.getTotalBytes();
+                        percent = totalSize == 0 ? 1.0d : (double) size / totalSize;
+                        percentString = "%.1f%% %.2f/%.2f GB%s; %s".formatted(percent * 100, size / BYTES_IN_GIB,
+                                totalSize / BYTES_IN_GIB, rates(gameThroughputModel), remainingTime(plan, gameThroughputModel));
+                    } else if (planFuture.isCompletedExceptionally()) {
+                        percent = 0.0d;
+                        percentString = "Could not read game files";
                     } else {
-                        percentString = "Calculating size of game...";
+                        percentString = "Planning download...";
                         percent = ProgressBar.INDETERMINATE_PROGRESS;
                     }
 
@@ -113,15 +145,35 @@ public class Downloader implements AutoCloseable {
 
         logger.debug("Execute code that downloads game in background thread");
         var downloadFuture = executorService.submit(() -> {
+            if (activeDownloads.getAndIncrement() == 0) {
+                logger.debug("Nothing was downloading, don't count the idle time in the queue throughput");
+                queueThroughputModel.resetBaseline();
+            }
             try {
                 logger.debug("Starting download for game {}, from {} to {}", game, from, to);
                 started.set(true);
+                TransferPlan plan;
                 try {
-                    Files.walkFileTree(from, visitor);
-                } catch (IOException e) {
-                    logger.error("Could not copy files", e);
-                    throw new UncheckedIOException(e);
+                    plan = planFuture.get();
+                    plan.createDirectories();
+                    plan.deleteStaleTempFiles();
+                } catch (InterruptedException e) {
+                    logger.info("Download task for {} canceled while planning", game.name());
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException | IOException e) {
+                    logger.error("Could not plan download of {}", game.name(), e);
+                    done.set(true);
+                    Platform.runLater(() -> {
+                        progressBar.setProgress(0.0d);
+                        gameNameLabel.textProperty().set("Could not download " + game.name());
+                        dialogPane.getButtonTypes().setAll(ButtonType.OK);
+                        percentLabel.textProperty().set("Could not read or create the game's folders");
+                    });
+                    return;
                 }
+
+                copyFiles(plan);
                 done.set(true);
 
                 if (Thread.interrupted()) {
@@ -132,27 +184,21 @@ public class Downloader implements AutoCloseable {
                 logger.debug("Cancel process tracking since download is finished");
                 progressTrackerScheduledFuture.cancel(true);
 
-                var downloadDuration = Duration.between(start, Instant.now());
-                long s = downloadDuration.getSeconds();
-                var formattedDuration = "%d:%02d:%02d".formatted(s / 3600, (s % 3600) / 60, (s % 60));
-
-                @Nullable Long fromSize = null;
-                try {
-                    if (fromSizeFuture.isDone()) {
-                        fromSize = fromSizeFuture.get();
-                    }
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("Could not calculate remote size for game {}", game.name(), e);
+                var failedFiles = plan.getFailedFiles();
+                if (!failedFiles.isEmpty()) {
+                    logger.error("Could not copy {} files of {}: {}", failedFiles.size(), game.name(), failedFiles);
+                    Platform.runLater(() -> {
+                        gameNameLabel.textProperty().set("Could not download all of " + game.name());
+                        dialogPane.getButtonTypes().setAll(ButtonType.OK);
+                        percentLabel.textProperty().set("%d files failed, download again to retry them".formatted(failedFiles.size()));
+                    });
+                    return;
                 }
 
-                final String percentString;
-                if (fromSize != null) {
-                    percentString = "%.1f%% %.2f/%.2f GB; finished in %s".formatted(100.0, fromSize / BYTES_IN_GIB, fromSize / BYTES_IN_GIB, formattedDuration);
-                } else {
-                    var size = visitor.getBytesTransferred();
-                    double gbs = size / BYTES_IN_GIB;
-                    percentString = "100%% %.2f GB; finished in %s".formatted(gbs, formattedDuration);
-                }
+                var downloadDuration = Duration.between(start, Instant.now());
+                var formattedDuration = formatDuration(downloadDuration.getSeconds());
+                var totalSize = plan.getTotalBytes();
+                var percentString = "%.1f%% %.2f/%.2f GB; finished in %s".formatted(100.0, totalSize / BYTES_IN_GIB, totalSize / BYTES_IN_GIB, formattedDuration);
 
                 Platform.runLater(() -> {
                     progressBar.setProgress(100.0);
@@ -161,15 +207,17 @@ public class Downloader implements AutoCloseable {
                     percentLabel.textProperty().set(percentString);
                 });
             } finally {
+                activeDownloads.decrementAndGet();
                 PowerManagement.INSTANCE.allowSleep();
                 progressTrackerScheduledFuture.cancel(true);
-                fromSizeFuture.cancel(true);
+                planFuture.thenAccept(queuedPlans::remove);
             }
         });
 
         cancelButton.setOnAction(a -> {
             downloadFuture.cancel(true);
             progressTrackerScheduledFuture.cancel(true);
+            planFuture.thenAccept(queuedPlans::remove);
         });
 
         dialog.setDialogPane(dialogPane);
@@ -188,25 +236,95 @@ public class Downloader implements AutoCloseable {
     }
 
     /**
-     * Calculate the size of {@code path}
-     *
-     * @param path to calculate the size of
-     * @return size of all files in path recursively down in bytes
+     * Copy every file in {@code plan} with {@link #WORKERS_PER_GAME} workers, the calling thread being one of them.
+     * The calling thread fills the gaps with the smallest files while the other workers start on the largest.
      */
-    private static long size(Path path) {
+    private void copyFiles(TransferPlan plan) {
+        var workers = new ArrayList<Future<?>>();
         try {
-            return Files.walk(path)
-                    .filter(p -> p.toFile().isFile())
-                    .mapToLong(p -> p.toFile().length())
-                    .sum();
-        } catch (IOException e) {
-            throw new UncheckedIOException("Could not calculate size of path " + path, e);
+            for (int i = 1; i < WORKERS_PER_GAME; i++) {
+                workers.add(fileExecutorService.submit(() -> copyFiles(plan, plan::pollLargest)));
+            }
+            copyFiles(plan, plan::pollSmallest);
+            for (var worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Copy worker failed", e.getCause());
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+    }
+
+    private void copyFiles(TransferPlan plan, Supplier<FileTransfer> next) {
+        FileTransfer transfer;
+        while (!Thread.currentThread().isInterrupted() && (transfer = next.get()) != null) {
+            var copiedBytes = new AtomicLong();
+            try {
+                copier.copy(transfer.source(), transfer.target(), transfer.size(), bytes -> {
+                    copiedBytes.addAndGet(bytes);
+                    plan.bytesCopied(bytes);
+                    queueCopiedBytes.addAndGet(bytes);
+                });
+                plan.fileCopied();
+                queueCopiedFiles.incrementAndGet();
+            } catch (InterruptedIOException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.error("Could not copy {}, skipping it", transfer.source(), e);
+                plan.fileFailed(transfer, copiedBytes.get());
+            }
         }
     }
 
+    /**
+     * Describe how long {@code plan} and everything else that's queued still need.
+     */
+    private String remainingTime(TransferPlan plan, ThroughputModel gameThroughputModel) {
+        var gameSeconds = gameThroughputModel.estimateSeconds(plan.getRemainingBytes(), plan.getRemainingFiles());
+        if (gameSeconds.isEmpty()) {
+            return "estimating time left...";
+        }
+        var remaining = "about %s left".formatted(formatDuration((long) gameSeconds.getAsDouble()));
+        if (queuedPlans.size() > 1) {
+            var queueBytes = queuedPlans.stream().mapToLong(TransferPlan::getRemainingBytes).sum();
+            var queueFiles = queuedPlans.stream().mapToLong(TransferPlan::getRemainingFiles).sum();
+            var queueSeconds = queueThroughputModel.estimateSeconds(queueBytes, queueFiles);
+            if (queueSeconds.isPresent()) {
+                remaining += ", %s for all downloads".formatted(formatDuration((long) queueSeconds.getAsDouble()));
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Describe the modelled bytes/sec and files/sec of a download, empty until the model has enough data.
+     */
+    private static String rates(ThroughputModel throughputModel) {
+        var bytesPerSecond = throughputModel.bytesPerSecond();
+        var filesPerSecond = throughputModel.filesPerSecond();
+        if (bytesPerSecond.isPresent() && filesPerSecond.isPresent()) {
+            return " at %.1f MB/s, %.1f files/s".formatted(bytesPerSecond.getAsDouble() / BYTES_IN_MIB, filesPerSecond.getAsDouble());
+        } else if (bytesPerSecond.isPresent()) {
+            return " at %.1f MB/s".formatted(bytesPerSecond.getAsDouble() / BYTES_IN_MIB);
+        } else if (filesPerSecond.isPresent()) {
+            return " at %.1f files/s".formatted(filesPerSecond.getAsDouble());
+        }
+        return "";
+    }
+
+    private static String formatDuration(long s) {
+        return "%d:%02d:%02d".formatted(s / 3600, (s % 3600) / 60, (s % 60));
+    }
+
     @Override
     public void close() {
         executorService.shutdownNow();
+        fileExecutorService.shutdownNow();
         scheduledExecutorService.shutdownNow();
+        copier.close();
+        planner.close();
     }
 }
@@ -0,0 +1,13 @@
+package io.jryan.lan.steam;
+
+import java.nio.file.Path;
+
+/**
+ * A single file in a {@link TransferPlan}.
+ *
+ * @param source file to copy
+ * @param target where the file is copied to
+ * @param size   size of {@code source} in bytes when the plan was made
+ */
+public record FileTransfer(Path source, Path target, long size) {
+}
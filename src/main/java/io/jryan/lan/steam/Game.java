@@ -1,11 +1,16 @@
 package io.jryan.lan.steam;
 
-import javafx.scene.image.ImageView;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
 
-public record Game(Path path, @Nullable ImageView icon) {
+/**
+ * A game folder in the library.
+ *
+ * @param path folder of the game
+ * @param icon key of the game's icon in the {@link IconStore}, null if it has none
+ */
+public record Game(Path path, @Nullable IconKey icon) {
 
     public String name() {
         return path.getFileName().toString();
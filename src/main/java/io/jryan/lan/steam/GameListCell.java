@@ -1,20 +1,43 @@
 package io.jryan.lan.steam;
 
+import javafx.application.Platform;
 import javafx.scene.control.ListCell;
+import javafx.scene.image.ImageView;
 
 /**
- * Takes a {@link Game} and renders it as a row in a List View.
+ * Takes a {@link Game} and renders it as a row in a List View. The cell keeps its own {@link ImageView} and only
+ * swaps the image when it's reused for another game.
  */
 public class GameListCell extends ListCell<Game> {
+    private final IconStore iconStore;
+    private final ImageView imageView = new ImageView();
+
+    public GameListCell(IconStore iconStore) {
+        this.iconStore = iconStore;
+    }
+
     @Override
     public void updateItem(Game exe, boolean empty) {
         super.updateItem(exe, empty);
         if (empty) {
             setText(null);
             setGraphic(null);
+            imageView.setImage(null);
         } else {
             setText(exe.name());
-            setGraphic(exe.icon());
+            var icon = iconStore.icon(exe.icon());
+            if (icon.isDone()) {
+                imageView.setImage(icon.join());
+            } else {
+                imageView.setImage(iconStore.placeholder());
+                icon.thenAcceptAsync(image -> {
+                    // The cell may show another game by the time the icon is loaded
+                    if (getItem() == exe) {
+                        imageView.setImage(image);
+                    }
+                }, Platform::runLater);
+            }
+            setGraphic(imageView);
         }
     }
 }
@@ -0,0 +1,11 @@
+package io.jryan.lan.steam;
+
+import java.nio.file.Path;
+
+/**
+ * Identifies the icon of a game in the {@link IconStore}, without holding on to the icon itself.
+ *
+ * @param folder game folder whose exes the icon is extracted from
+ */
+public record IconKey(Path folder) {
+}
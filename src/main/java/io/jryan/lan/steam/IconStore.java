@@ -0,0 +1,169 @@
+package io.jryan.lan.steam;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Holds the icons of the games so a {@link Game} only needs an {@link IconKey}.
+ * <p>
+ * Icons are loaded on first use on a background thread and kept as packed premultiplied ARGB pixels, which the
+ * {@link Image} handed out shares instead of copying. Identical icons, e.g. the default icon of an engine that many
+ * games use, are stored once. At most {@code maxIcons} distinct icons are kept, the least recently used ones are
+ * evicted and loaded again when they are needed, so memory stays flat no matter how many games there are.
+ */
+@ThreadSafe
+public class IconStore {
+    private static final Logger logger = LoggerFactory.getLogger(IconStore.class);
+    private static final String PLACEHOLDER_RESOURCE = "/icons8-question-mark-48.png";
+
+    private final Function<IconKey, @Nullable BufferedImage> loader;
+    private final Map<IconKey, Icon> iconsByKey = new HashMap<>();
+    private final Map<IconKey, CompletableFuture<Image>> loading = new HashMap<>();
+    private final LinkedHashMap<Icon, Icon> icons;
+    private final ExecutorService loaderExecutorService = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "icon loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxIcons how many distinct icons to keep
+     * @param loader   loads the icon for a key, or returns null if there is none. Called on a background thread
+     */
+    public IconStore(int maxIcons, Function<IconKey, @Nullable BufferedImage> loader) {
+        this.loader = loader;
+        this.icons = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Icon, Icon> eldest) {
+                if (size() <= maxIcons) {
+                    return false;
+                }
+                logger.debug("Evicting least recently used icon");
+                iconsByKey.values().removeIf(icon -> icon == eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the icon for {@code key}.
+     *
+     * @param key icon to get, null for games without an icon
+     * @return the icon, already completed if it's in the store. Completes with the placeholder if the game has no icon
+     */
+    public synchronized CompletableFuture<Image> icon(@Nullable IconKey key) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(placeholder());
+        }
+        var icon = iconsByKey.get(key);
+        if (icon != null) {
+            icons.get(icon); // mark as recently used
+            return CompletableFuture.completedFuture(icon.image);
+        }
+        return loading.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> load(k), loaderExecutorService));
+    }
+
+    /**
+     * @return the question-mark shown for games without an icon, or while the icon is loading
+     */
+    public Image placeholder() {
+        return Placeholder.ICON.image;
+    }
+
+    private Image load(IconKey key) {
+        Icon icon;
+        try {
+            var image = loader.apply(key);
+            icon = image != null ? Icon.of(image) : Placeholder.ICON;
+        } catch (RuntimeException e) {
+            logger.warn("Could not load icon for {}", key.folder(), e);
+            icon = Placeholder.ICON;
+        }
+        synchronized (this) {
+            loading.remove(key);
+            var shared = icons.get(icon);
+            if (shared == null) {
+                icons.put(icon, icon);
+                shared = icon;
+            }
+            iconsByKey.put(key, shared);
+            return shared.image;
+        }
+    }
+
+    /**
+     * Packed pixels of an icon, equal to any other icon with the same pixels.
+     */
+    private static final class Icon {
+        private final int width;
+        private final int[] pixels;
+        private final int hash;
+        private final Image image;
+
+        private Icon(int width, int height, int[] pixels) {
+            this.width = width;
+            this.pixels = pixels;
+            this.hash = 31 * width + Arrays.hashCode(pixels);
+            this.image = new WritableImage(new PixelBuffer<>(width, height, IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance()));
+        }
+
+        static Icon of(BufferedImage image) {
+            var packed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+            var graphics = packed.createGraphics();
+            try {
+                graphics.drawImage(image, 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+            var pixels = ((DataBufferInt) packed.getRaster().getDataBuffer()).getData();
+            return new Icon(packed.getWidth(), packed.getHeight(), pixels);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Icon icon && width == icon.width && Arrays.equals(pixels, icon.pixels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Holds the question-mark icon so it's only loaded when it's first needed.
+     */
+    private static final class Placeholder {
+        static final Icon ICON = loadPlaceholder();
+
+        private static Icon loadPlaceholder() {
+            var url = Objects.requireNonNull(IconStore.class.getResource(PLACEHOLDER_RESOURCE), "Cannot find " + PLACEHOLDER_RESOURCE + " on classpath");
+            try {
+                return Icon.of(ImageIO.read(url));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load " + PLACEHOLDER_RESOURCE, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package io.jryan.lan.steam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Copies single files from sources that can be slow or flaky, like SMB shares.
+ * <p>
+ * Every copy goes into a temporary file next to the target which is only moved into place once it's complete, so an
+ * aborted copy never leaves a half written file behind. On top of that:
+ * <ul>
+ *     <li>an attempt that makes no progress for {@link RetryPolicy#stallTimeout()} is abandoned, the copy is retried
+ *     straight away without waiting for the abandoned attempt's read to return</li>
+ *     <li>failed attempts are retried with exponential backoff</li>
+ *     <li>an attempt that's going much slower than the median file gets a second, hedged, attempt and whichever
+ *     finishes first wins, unless the file is larger than {@link RetryPolicy#maxHedgeBytes()}</li>
+ * </ul>
+ */
+@ThreadSafe
+public class ResilientFileCopier implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientFileCopier.class);
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * One buffer per attempt thread, reused for every file it copies. Direct memory is only given back after a GC,
+     * which hardly happens in this app, so allocating a buffer per file would pile up direct memory on games with
+     * many small files.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    /**
+     * Small files are dominated by latency rather than throughput so they would drag the median down.
+     */
+    private static final long MIN_MEDIAN_SAMPLE_BYTES = 1 << 20;
+    private static final long MAX_POLL_MILLIS = 1000;
+    /**
+     * Ends the name of every temporary file, so ones left behind by a killed process can be found and deleted.
+     */
+    static final String TEMP_SUFFIX = ".sgt-part";
+
+    private final RetryPolicy policy;
+    private final SourceOpener sourceOpener;
+    private final ThroughputMedian throughputMedian = new ThroughputMedian();
+    private final AtomicInteger attemptThreadCount = new AtomicInteger();
+    private final AtomicLong tempFileCount = new AtomicLong();
+    private final ExecutorService attemptExecutorService = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "copy attempt " + attemptThreadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Cancels abandoned attempts. Interrupting a thread blocked in {@link FileChannel#read(ByteBuffer)} closes the
+     * channel on the interrupting thread, and closing waits for the blocked read to return, which can take as long as
+     * the share takes to answer. So it's never done by the thread coordinating the copy.
+     */
+    private final ExecutorService abandonExecutorService = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "copy attempt canceller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ResilientFileCopier(RetryPolicy policy) {
+        this(policy, source -> FileChannel.open(source, StandardOpenOption.READ));
+    }
+
+    ResilientFileCopier(RetryPolicy policy, SourceOpener sourceOpener) {
+        this.policy = policy;
+        this.sourceOpener = sourceOpener;
+    }
+
+    /**
+     * Copy {@code source} to {@code target}, retrying as configured by the {@link RetryPolicy}.
+     *
+     * @param source   file to copy
+     * @param target   where to copy the file to, must not exist yet
+     * @param size     expected size of {@code source}, decides whether a slow copy may be hedged
+     * @param progress called from the calling thread with the amount of new bytes copied. Only the furthest attempt
+     *                 counts, so bytes aren't reported twice when an attempt is retried or hedged
+     * @throws InterruptedIOException if the calling thread was interrupted
+     * @throws IOException            the error of the last attempt if every attempt failed
+     */
+    public void copy(Path source, Path target, long size, LongConsumer progress) throws IOException {
+        var reporter = new ProgressReporter(progress);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                copyOnce(source, target, size, reporter);
+                return;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= policy.maxAttempts()) {
+                    logger.error("Giving up on {} after {} attempts", source, attempt);
+                    throw e;
+                }
+                var backoff = policy.backoff(attempt);
+                logger.warn("Attempt {} to copy {} failed, retrying in {}", attempt, source, backoff, e);
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry " + source);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run one round of copying {@code source}: a primary attempt and at most one hedged attempt.
+     */
+    private void copyOnce(Path source, Path target, long size, ProgressReporter reporter) throws IOException {
+        var completionService = new ExecutorCompletionService<Attempt>(attemptExecutorService);
+        var running = new ArrayList<Attempt>();
+        var pollMillis = Math.max(1, Math.min(MAX_POLL_MILLIS, policy.stallTimeout().toMillis() / 4));
+        // Too big to copy twice, see RetryPolicy
+        boolean hedged = size > policy.maxHedgeBytes();
+        IOException lastError = null;
+        try {
+            running.add(startAttempt(completionService, source, target, 1));
+            while (!running.isEmpty()) {
+                Future<Attempt> finished;
+                try {
+                    finished = completionService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while copying " + source);
+                }
+
+                if (finished != null) {
+                    var attempt = running.stream().filter(a -> a.future == finished).findFirst().orElse(null);
+                    if (attempt == null) {
+                        // Already abandoned, whatever it did doesn't count
+                        continue;
+                    }
+                    running.remove(attempt);
+                    try {
+                        var winner = finished.get();
+                        moveIntoPlace(winner.temp, target);
+                        reporter.report(winner.bytes.get());
+                        recordThroughput(winner);
+                        if (winner.number > 1) {
+                            logger.info("Hedged copy of {} finished first", source);
+                        }
+                        return;
+                    } catch (ExecutionException e) {
+                        lastError = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                        logger.debug("Copy attempt {} of {} failed", attempt.number, source, lastError);
+                    } catch (CancellationException e) {
+                        logger.debug("Copy attempt of {} was cancelled", source);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while copying " + source);
+                    }
+                    continue;
+                }
+
+                running.stream().mapToLong(a -> a.bytes.get()).max().ifPresent(reporter::report);
+
+                var now = System.nanoTime();
+                for (var attempt : List.copyOf(running)) {
+                    if (now - attempt.lastProgressNanos > policy.stallTimeout().toNanos()) {
+                        logger.warn("Copy attempt {} of {} made no progress for {}, abandoning it", attempt.number, source, policy.stallTimeout());
+                        abandon(attempt);
+                        running.remove(attempt);
+                        lastError = new IOException("Timed out copying " + source + " after no progress for " + policy.stallTimeout());
+                    }
+                }
+
+                if (!hedged && running.size() == 1 && isStraggler(running.get(0), now)) {
+                    logger.info("Copy of {} is much slower than the median, hedging with a second attempt", source);
+                    running.add(startAttempt(completionService, source, target, 2));
+                    hedged = true;
+                }
+            }
+            throw lastError != null ? lastError : new IOException("Could not copy " + source);
+        } finally {
+            running.forEach(this::abandon);
+        }
+    }
+
+    /**
+     * Give up on {@code attempt} without waiting for it. Its thread deletes its temporary file once it unwinds.
+     */
+    private void abandon(Attempt attempt) {
+        if (attempt.settled.compareAndSet(false, true)) {
+            abandonExecutorService.execute(() -> attempt.future.cancel(true));
+        } else {
+            // Finished at the same time as the winner, nobody is going to move its copy into place
+            deleteQuietly(attempt.temp);
+        }
+    }
+
+    private boolean isStraggler(Attempt attempt, long now) {
+        var elapsedNanos = now - attempt.startNanos;
+        if (elapsedNanos < policy.hedgeDelay().toNanos()) {
+            return false;
+        }
+        var median = throughputMedian.median();
+        if (median.isEmpty()) {
+            return false;
+        }
+        var bytesPerSecond = attempt.bytes.get() / (elapsedNanos / 1e9);
+        return bytesPerSecond * policy.hedgeSlowdownFactor() < median.getAsDouble();
+    }
+
+    private void recordThroughput(Attempt attempt) {
+        var bytes = attempt.bytes.get();
+        var seconds = (System.nanoTime() - attempt.startNanos) / 1e9;
+        if (bytes >= MIN_MEDIAN_SAMPLE_BYTES && seconds > 0) {
+            throughputMedian.add(bytes / seconds);
+        }
+    }
+
+    private Attempt startAttempt(CompletionService<Attempt> completionService, Path source, Path target, int number) throws IOException {
+        var temp = createTempFile(target);
+        var attempt = new Attempt(number, temp);
+        attempt.future = completionService.submit(() -> {
+            try {
+                copyChannel(source, temp, attempt);
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(temp);
+                throw e;
+            }
+            if (!attempt.settled.compareAndSet(false, true)) {
+                deleteQuietly(temp);
+                throw new IOException("Copy attempt " + number + " of " + source + " was abandoned");
+            }
+            return attempt;
+        });
+        return attempt;
+    }
+
+    /**
+     * Create an empty temporary file next to {@code target}, with a name no other attempt uses. An abandoned attempt
+     * deletes its own temporary file whenever it unwinds, so it must never be shared with a later attempt.
+     */
+    private Path createTempFile(Path target) throws IOException {
+        while (true) {
+            var temp = target.resolveSibling(target.getFileName() + "." + tempFileCount.incrementAndGet() + TEMP_SUFFIX);
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                logger.debug("Temporary file {} already exists, trying another name", temp);
+            }
+        }
+    }
+
+    /**
+     * Copy until the end of {@code source}, or until the attempt is abandoned. A read that's hung on the network may
+     * not return until the share answers, but nothing waits for this thread once the attempt is abandoned.
+     */
+    private void copyChannel(Path source, Path temp, Attempt attempt) throws IOException {
+        try (var in = sourceOpener.open(source);
+             var out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            var buffer = BUFFER.get().clear();
+            while (in.read(buffer) != -1) {
+                if (attempt.settled.get()) {
+                    throw new IOException("Copy attempt " + attempt.number + " of " + source + " was abandoned");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                attempt.bytes.addAndGet(buffer.position());
+                attempt.lastProgressNanos = System.nanoTime();
+                buffer.clear();
+            }
+        }
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target);
+            }
+        } catch (IOException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete temporary file {}", path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        attemptExecutorService.shutdownNow();
+        abandonExecutorService.shutdownNow();
+    }
+
+    /**
+     * Opens the file being copied. Tests replace it to act like a slow, failing or hung share.
+     */
+    @FunctionalInterface
+    interface SourceOpener {
+        ReadableByteChannel open(Path source) throws IOException;
+    }
+
+    private static final class ProgressReporter {
+        final LongConsumer progress;
+        long reported = 0;
+
+        ProgressReporter(LongConsumer progress) {
+            this.progress = progress;
+        }
+
+        void report(long bytes) {
+            if (bytes > reported) {
+                progress.accept(bytes - reported);
+                reported = bytes;
+            }
+        }
+    }
+
+    private static final class Attempt {
+        final int number;
+        final Path temp;
+        final long startNanos = System.nanoTime();
+        final AtomicLong bytes = new AtomicLong();
+        volatile long lastProgressNanos = startNanos;
+        /**
+         * Set by whoever decides the attempt's fate first: the attempt when it copied everything, or the coordinator
+         * when it abandons the attempt.
+         */
+        final AtomicBoolean settled = new AtomicBoolean();
+        Future<Attempt> future;
+
+        Attempt(int number, Path temp) {
+            this.number = number;
+            this.temp = temp;
+        }
+    }
+}
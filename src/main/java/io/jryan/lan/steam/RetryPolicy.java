@@ -0,0 +1,62 @@
+package io.jryan.lan.steam;
+
+import java.time.Duration;
+
+/**
+ * How hard {@link ResilientFileCopier} tries before giving up on a file.
+ * <p>
+ * A hedged attempt copies the whole file again from the first byte, since the sources are plain streams that can't be
+ * resumed part way. For a big file that doubles the load on a share that is already slow and throws away whatever the
+ * straggler had copied, so files larger than {@code maxHedgeBytes} are never hedged and rely on the stall timeout
+ * instead.
+ *
+ * @param maxAttempts          how many times a file is copied before the last error is reported
+ * @param initialBackoff       wait before the second attempt, doubled for each attempt after that
+ * @param maxBackoff           upper bound on the wait between attempts
+ * @param stallTimeout         an attempt that makes no progress for this long is abandoned
+ * @param hedgeDelay           how long an attempt has to run before it can be considered a straggler
+ * @param hedgeSlowdownFactor  an attempt is a straggler when it's this many times slower than the median file
+ * @param maxHedgeBytes        files larger than this are never hedged
+ */
+public record RetryPolicy(int maxAttempts,
+                          Duration initialBackoff,
+                          Duration maxBackoff,
+                          Duration stallTimeout,
+                          Duration hedgeDelay,
+                          double hedgeSlowdownFactor,
+                          long maxHedgeBytes) {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(
+            5,
+            Duration.ofSeconds(1),
+            Duration.ofSeconds(30),
+            Duration.ofSeconds(30),
+            Duration.ofSeconds(10),
+            4.0,
+            256L << 20
+    );
+
+    public RetryPolicy {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1, was " + maxAttempts);
+        }
+        if (hedgeSlowdownFactor <= 1.0) {
+            throw new IllegalArgumentException("hedgeSlowdownFactor must be greater than 1, was " + hedgeSlowdownFactor);
+        }
+        if (maxHedgeBytes < 0) {
+            throw new IllegalArgumentException("maxHedgeBytes must not be negative, was " + maxHedgeBytes);
+        }
+    }
+
+    /**
+     * Exponential backoff to wait after {@code failedAttempt} failed.
+     *
+     * @param failedAttempt 1 based number of the attempt that just failed
+     * @return how long to wait before the next attempt
+     */
+    public Duration backoff(int failedAttempt) {
+        var shift = Math.min(failedAttempt - 1, 30);
+        var backoff = initialBackoff.multipliedBy(1L << shift);
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,63 @@
+package io.jryan.lan.steam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Times the phases of starting the application so the time until the first frame is shown can be measured and
+ * regressions caught. Phases are marked in order with {@link #mark(String)}, each one ending the previous one.
+ * {@link #report()} logs how long every phase took, starting from when the JVM process was started.
+ */
+@ThreadSafe
+enum StartupProfile {
+    INSTANCE;
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupProfile.class);
+
+    private final Instant processStart = ProcessHandle.current().info().startInstant().orElse(null);
+    private final long firstMarkNanos = System.nanoTime();
+    private final Instant firstMark = Instant.now();
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private boolean reported = false;
+
+    /**
+     * End the current phase.
+     *
+     * @param phase what was done since the previous mark
+     */
+    public synchronized void mark(String phase) {
+        if (!reported) {
+            phases.put(phase, System.nanoTime());
+        }
+    }
+
+    /**
+     * Log the time every phase took, only the first call logs anything.
+     */
+    public synchronized void report() {
+        if (reported) {
+            return;
+        }
+        reported = true;
+        var report = new StringBuilder("Startup profile:");
+        if (processStart != null) {
+            var jvmStartup = Duration.between(processStart, firstMark);
+            report.append("%n  %-32s %6d ms".formatted("JVM and JavaFX launcher", jvmStartup.toMillis()));
+        }
+        long previous = firstMarkNanos;
+        for (var phase : phases.entrySet()) {
+            report.append("%n  %-32s %6d ms".formatted(phase.getKey(), Duration.ofNanos(phase.getValue() - previous).toMillis()));
+            previous = phase.getValue();
+        }
+        var total = processStart != null
+                ? Duration.between(processStart, firstMark).plusNanos(previous - firstMarkNanos)
+                : Duration.ofNanos(previous - firstMarkNanos);
+        report.append("%n  %-32s %6d ms".formatted("Total", total.toMillis()));
+        logger.info(report.toString());
+    }
+}
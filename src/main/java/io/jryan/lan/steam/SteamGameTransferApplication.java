@@ -3,19 +3,18 @@ package io.jryan.lan.steam;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.image.WritableImage;
 import javafx.stage.Stage;
 import me.marnic.jiconextract2.JIconExtract;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
@@ -29,18 +28,40 @@ import java.util.stream.Collectors;
 public class SteamGameTransferApplication extends Application {
 
     private static final Logger logger = LoggerFactory.getLogger(SteamGameTransferApplication.class);
-    private final Image questionMarkImage = new Image("/icons8-question-mark-48.png");
-    private final Downloader downloader = new Downloader();
+    /**
+     * Set to exit as soon as the first frame is shown, used by the build to record the class-data-sharing archive.
+     */
+    private static final String EXIT_AFTER_FIRST_FRAME_PROPERTY = "steamGameTransfer.exitAfterFirstFrame";
+    private static final String DEFAULT_REMOTE_FOLDER = "Z:\\Steam";
+    private static final int ICON_SIZE = 48;
+    /**
+     * Distinct icons kept in memory, about 9 KiB each at 48x48.
+     */
+    private static final int MAX_ICONS = 256;
+    private final IconStore iconStore = new IconStore(MAX_ICONS, key -> extractIconFromAnExeInGamePath(key.folder()));
+    private Downloader downloader = null;
 
     public SteamGameTransferApplication() {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            downloader.close();
-            try {
-                PowerManagement.INSTANCE.allowSleep();
-            } catch (Exception e) {
-                logger.warn("Could not allow sleep", e);
-            }
-        }, "downloader and powercfg cleanup thread"));
+        StartupProfile.INSTANCE.mark("Application constructed");
+    }
+
+    /**
+     * Get the downloader, creating it and its threads on first use since nothing needs it until a download is started.
+     */
+    private synchronized Downloader downloader() {
+        if (downloader == null) {
+            logger.debug("Creating downloader");
+            downloader = new Downloader(iconStore);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                downloader.close();
+                try {
+                    PowerManagement.INSTANCE.allowSleep();
+                } catch (Exception e) {
+                    logger.warn("Could not allow sleep", e);
+                }
+            }, "downloader and powercfg cleanup thread"));
+        }
+        return downloader;
     }
 
     @Override
@@ -63,21 +84,23 @@ public class SteamGameTransferApplication extends Application {
         primaryStage.setMinWidth(700);
         primaryStage.setMinHeight(700);
         primaryStage.setResizable(true);
+        StartupProfile.INSTANCE.mark("Primary stage set up");
 
         logger.info("Setting up main dialog");
         var dialogUrl = Objects.requireNonNull(getClass().getResource("/dialog.fxml"), "Could not find /dialog.fxml");
         var fxmlLoader = new FXMLLoader(dialogUrl);
-        fxmlLoader.setController(new Controller(downloader));
+        fxmlLoader.setController(new Controller(this::downloader));
         Parent parent;
         try {
             parent = fxmlLoader.load();
         } catch (IOException e) {
             throw new UncheckedIOException("Could not load /dialog.fxml", e);
         }
+        StartupProfile.INSTANCE.mark("Main dialog loaded");
 
         logger.debug("Setting up #gameList");
         @SuppressWarnings("unchecked") ListView<Game> gameList = (ListView<Game>) parent.lookup("#gameList");
-        gameList.setCellFactory(p -> new GameListCell());
+        gameList.setCellFactory(p -> new GameListCell(iconStore));
         gameList.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
         logger.debug("Setting up #remoteFolderTextField");
@@ -95,7 +118,7 @@ public class SteamGameTransferApplication extends Application {
                     var games = paths
                             .filter(Files::isDirectory)
                             .filter(p -> !p.equals(root))
-                            .map(p -> new Game(p, extractIconFromAnExeInGamePath(p)))
+                            .map(p -> new Game(p, new IconKey(p)))
                             .collect(Collectors.toList());
                     Platform.runLater(() -> {
                         gameList.setItems(FXCollections.observableArrayList(games));
@@ -113,15 +136,41 @@ public class SteamGameTransferApplication extends Application {
                 }
             });
         });
-        remoteFolderTextField.textProperty().set("Z:\\Steam");
 
         var scene = new Scene(parent);
         primaryStage.setScene(scene);
         logger.info("Showing stage");
         primaryStage.show();
+        StartupProfile.INSTANCE.mark("Stage shown");
+
+        logger.debug("Waiting for the first frame before scanning the game library");
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                // Post-layout listeners run before the pulse hands the frame to the renderer, so the frame is only
+                // shown once the pulse is over and the FX thread gets to this
+                Platform.runLater(() -> {
+                    StartupProfile.INSTANCE.mark("First frame");
+                    StartupProfile.INSTANCE.report();
+                    if (Boolean.getBoolean(EXIT_AFTER_FIRST_FRAME_PROPERTY)) {
+                        logger.info("Exiting after first frame since {} is set", EXIT_AFTER_FIRST_FRAME_PROPERTY);
+                        Platform.exit();
+                        return;
+                    }
+                    remoteFolderTextField.textProperty().set(DEFAULT_REMOTE_FOLDER);
+                });
+            }
+        });
     }
 
-    private ImageView extractIconFromAnExeInGamePath(Path gamePath) {
+    /**
+     * Extract the icon of the first exe in {@code gamePath} that has one. Called by the {@link IconStore} when the
+     * icon is first shown.
+     *
+     * @return the icon, or null if no exe has one
+     */
+    private @Nullable BufferedImage extractIconFromAnExeInGamePath(Path gamePath) {
         try (var files = Files.walk(gamePath, 1)) {
             var exes = files
                     .filter(Files::isRegularFile)
@@ -130,10 +179,10 @@ public class SteamGameTransferApplication extends Application {
                     .collect(Collectors.toList());
             for (Path exe : exes) {
                 try {
-                    int iconSize = 48;
-                    var iconForFile = JIconExtract.getIconForFile(iconSize, iconSize, exe.toFile());
-                    var img = new WritableImage(iconSize, iconSize);
-                    return new ImageView(SwingFXUtils.toFXImage(iconForFile, img));
+                    var iconForFile = JIconExtract.getIconForFile(ICON_SIZE, ICON_SIZE, exe.toFile());
+                    if (iconForFile != null) {
+                        return iconForFile;
+                    }
                 } catch (Exception e) {
                     logger.error("Error loading icon for game {}, trying next exe", gamePath);
                 }
@@ -142,7 +191,7 @@ public class SteamGameTransferApplication extends Application {
             logger.warn("Error walking gamePath {}", gamePath, e);
         }
         logger.warn("Could not extract icon for {} from any exe, moving on", gamePath);
-        return new ImageView(questionMarkImage);
+        return null;
     }
 
     private boolean endsInExe(Path p) {
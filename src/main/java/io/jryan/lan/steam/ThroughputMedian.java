@@ -0,0 +1,42 @@
+package io.jryan.lan.steam;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+
+/**
+ * Running median of the throughput of the most recently copied files. Used to spot a copy that is going much slower
+ * than the files before it.
+ */
+@ThreadSafe
+class ThroughputMedian {
+    private static final int WINDOW = 64;
+    private static final int MIN_SAMPLES = 3;
+
+    private final double[] samples = new double[WINDOW];
+    private int count = 0;
+    private int next = 0;
+
+    /**
+     * Record a finished copy.
+     *
+     * @param bytesPerSecond throughput of the finished copy
+     */
+    public synchronized void add(double bytesPerSecond) {
+        samples[next] = bytesPerSecond;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+    }
+
+    /**
+     * @return median bytes/sec of the recent copies, or empty if there aren't enough copies to tell yet
+     */
+    public synchronized OptionalDouble median() {
+        if (count < MIN_SAMPLES) {
+            return OptionalDouble.empty();
+        }
+        var sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        var middle = count / 2;
+        return OptionalDouble.of(count % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2);
+    }
+}
@@ -0,0 +1,150 @@
+package io.jryan.lan.steam;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.OptionalDouble;
+
+/**
+ * Running model of how fast files are being copied, used to estimate the remaining time.
+ * <p>
+ * Copy time depends on both the amount of bytes and the amount of files, since every file has overhead of its own
+ * (opening, creating, closing, which is slow over SMB). So instead of a single bytes/sec figure the model fits
+ * <pre>
+ * seconds = bytes / bytesPerSecond + files / filesPerSecond
+ * </pre>
+ * over the progress samples it is given, using least squares with older samples decaying away so the model follows
+ * the network when it speeds up or slows down.
+ */
+@ThreadSafe
+public class ThroughputModel {
+    private static final double DECAY = 0.95;
+    private static final long MIN_SAMPLE_NANOS = 500_000_000L;
+    private static final double BYTES_IN_MIB = 1_048_576.0;
+
+    // Weighted sums for the normal equations; bytes are in MiB to keep the sums well conditioned
+    private double sumBytesBytes;
+    private double sumBytesFiles;
+    private double sumFilesFiles;
+    private double sumBytesSeconds;
+    private double sumFilesSeconds;
+
+    private boolean hasBaseline = false;
+    private long lastNanos;
+    private long lastBytes;
+    private long lastFiles;
+
+    /**
+     * Record the total progress so far. Only the difference to the previous sample is used, so this can be called
+     * whenever convenient, and by more than one thread. Time where nothing moved is added to the next sample that
+     * made progress, so stalls slow the model down instead of being ignored.
+     *
+     * @param totalBytes bytes copied so far
+     * @param totalFiles files copied so far
+     */
+    public void sample(long totalBytes, long totalFiles) {
+        sample(totalBytes, totalFiles, System.nanoTime());
+    }
+
+    /**
+     * {@link #sample(long, long)} taken at {@code now}, so tests can control the clock.
+     */
+    synchronized void sample(long totalBytes, long totalFiles, long now) {
+        if (!hasBaseline) {
+            setBaseline(now, totalBytes, totalFiles);
+            return;
+        }
+        var elapsedNanos = now - lastNanos;
+        if (elapsedNanos < MIN_SAMPLE_NANOS) {
+            return;
+        }
+        var bytes = (totalBytes - lastBytes) / BYTES_IN_MIB;
+        var files = (double) (totalFiles - lastFiles);
+        if (bytes <= 0 && files <= 0) {
+            // Nothing moved, keep the baseline so the time spent stalled counts towards the next sample
+            return;
+        }
+        var seconds = elapsedNanos / 1e9;
+        setBaseline(now, totalBytes, totalFiles);
+        sumBytesBytes = sumBytesBytes * DECAY + bytes * bytes;
+        sumBytesFiles = sumBytesFiles * DECAY + bytes * files;
+        sumFilesFiles = sumFilesFiles * DECAY + files * files;
+        sumBytesSeconds = sumBytesSeconds * DECAY + bytes * seconds;
+        sumFilesSeconds = sumFilesSeconds * DECAY + files * seconds;
+    }
+
+    /**
+     * Forget the last sample so the time until the next one isn't counted, e.g. after copying was paused.
+     */
+    public synchronized void resetBaseline() {
+        hasBaseline = false;
+    }
+
+    private void setBaseline(long nanos, long bytes, long files) {
+        hasBaseline = true;
+        lastNanos = nanos;
+        lastBytes = bytes;
+        lastFiles = files;
+    }
+
+    /**
+     * Estimate how long copying the rest will take.
+     *
+     * @param remainingBytes bytes left to copy
+     * @param remainingFiles files left to copy
+     * @return estimated seconds, or empty if there isn't enough data yet
+     */
+    public synchronized OptionalDouble estimateSeconds(long remainingBytes, long remainingFiles) {
+        var coefficients = fit();
+        if (coefficients == null) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(remainingBytes / BYTES_IN_MIB * coefficients[0] + remainingFiles * coefficients[1]);
+    }
+
+    /**
+     * @return modelled bytes per second, or empty if there isn't enough data yet
+     */
+    public synchronized OptionalDouble bytesPerSecond() {
+        var coefficients = fit();
+        if (coefficients == null || coefficients[0] <= 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(BYTES_IN_MIB / coefficients[0]);
+    }
+
+    /**
+     * @return modelled files per second, or empty if there isn't enough data yet
+     */
+    public synchronized OptionalDouble filesPerSecond() {
+        var coefficients = fit();
+        if (coefficients == null || coefficients[1] <= 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(1 / coefficients[1]);
+    }
+
+    /**
+     * Solve the least squares fit.
+     *
+     * @return seconds per MiB and seconds per file, or null if nothing has been sampled yet
+     */
+    private @Nullable double[] fit() {
+        var determinant = sumBytesBytes * sumFilesFiles - sumBytesFiles * sumBytesFiles;
+        if (determinant > 1e-9 * sumBytesBytes * sumFilesFiles) {
+            var secondsPerMib = (sumBytesSeconds * sumFilesFiles - sumFilesSeconds * sumBytesFiles) / determinant;
+            var secondsPerFile = (sumFilesSeconds * sumBytesBytes - sumBytesSeconds * sumBytesFiles) / determinant;
+            if (secondsPerMib >= 0 && secondsPerFile >= 0) {
+                return new double[]{secondsPerMib, secondsPerFile};
+            }
+        }
+        // Samples can't tell bytes and files apart (e.g. only one big file is copying), fall back to whichever
+        // explains the time on its own
+        if (sumBytesBytes > 0) {
+            return new double[]{sumBytesSeconds / sumBytesBytes, 0};
+        }
+        if (sumFilesFiles > 0) {
+            return new double[]{0, sumFilesSeconds / sumFilesFiles};
+        }
+        return null;
+    }
+}
@@ -0,0 +1,247 @@
+package io.jryan.lan.steam;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every file of a game that still has to be copied, ordered so the copy workers stay busy until the end.
+ * <p>
+ * Files are kept largest first. Most workers take from the large end so the big archives start straight away instead
+ * of being found last by a directory walk and copied alone; one worker takes from the small end and fills the gaps
+ * with small files. The two ends meet in the middle, so the last files copied are medium sized ones.
+ * <p>
+ * The plan also keeps track of what is left to copy, which {@link ThroughputModel} turns into a remaining time.
+ */
+@ThreadSafe
+public class TransferPlan {
+    private static final Logger logger = LoggerFactory.getLogger(TransferPlan.class);
+
+    private final List<Path> directories;
+    private final Deque<FileTransfer> pending;
+    private final long totalBytes;
+    private final long presentBytes;
+    private final AtomicLong copiedBytes = new AtomicLong();
+    private final AtomicLong copiedFiles = new AtomicLong();
+    private final AtomicLong failedBytes = new AtomicLong();
+    private final AtomicLong remainingBytes;
+    private final AtomicLong remainingFiles;
+    private final List<Path> failedFiles = new CopyOnWriteArrayList<>();
+
+    private TransferPlan(List<Path> directories, List<FileTransfer> files, long presentBytes, List<Path> unreadableFiles) {
+        this.directories = List.copyOf(directories);
+        var sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(FileTransfer::size).reversed());
+        this.pending = new ArrayDeque<>(sorted);
+        var queuedBytes = sorted.stream().mapToLong(FileTransfer::size).sum();
+        this.presentBytes = presentBytes;
+        this.totalBytes = presentBytes + queuedBytes;
+        this.remainingBytes = new AtomicLong(queuedBytes);
+        this.remainingFiles = new AtomicLong(sorted.size());
+        this.failedFiles.addAll(unreadableFiles);
+    }
+
+    /**
+     * Walk {@code source} and plan copying everything that isn't in {@code target} yet.
+     *
+     * @param source folder to copy
+     * @param target folder to copy into
+     * @return plan for the files that still need copying
+     * @throws IOException if {@code source} could not be walked
+     */
+    public static TransferPlan of(Path source, Path target) throws IOException {
+        return of(source, target, new AtomicLong());
+    }
+
+    /**
+     * Walk {@code source} and plan copying everything that isn't in {@code target} yet.
+     *
+     * @param source  folder to copy
+     * @param target  folder to copy into
+     * @param visited incremented for every file and folder visited, so a walk that's hung can be told apart from a
+     *                long one
+     * @return plan for the files that still need copying
+     * @throws InterruptedIOException if the calling thread was interrupted
+     * @throws IOException            if {@code source} could not be walked
+     */
+    public static TransferPlan of(Path source, Path target, AtomicLong visited) throws IOException {
+        var directories = new ArrayList<Path>();
+        var files = new ArrayList<FileTransfer>();
+        var unreadableFiles = new ArrayList<Path>();
+        var presentBytes = new AtomicLong();
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws InterruptedIOException {
+                checkInterrupted();
+                visited.incrementAndGet();
+                directories.add(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws InterruptedIOException {
+                checkInterrupted();
+                visited.incrementAndGet();
+                var to = target.resolve(source.relativize(file));
+                if (Files.exists(to)) {
+                    logger.debug("Already exists {}", file);
+                    presentBytes.addAndGet(attrs.size());
+                } else {
+                    files.add(new FileTransfer(file, to, attrs.size()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                visited.incrementAndGet();
+                logger.error("Could not read {}, skipping it", file, exc);
+                unreadableFiles.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            /**
+             * A half walked source would be planned as if it was the whole game, so stop with an exception instead.
+             */
+            private void checkInterrupted() throws InterruptedIOException {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while planning " + source);
+                }
+            }
+        });
+        logger.debug("Planned {} files in {} folders for {}", files.size(), directories.size(), source);
+        return new TransferPlan(directories, files, presentBytes.get(), unreadableFiles);
+    }
+
+    /**
+     * Create every folder of the plan in the target so files can be copied in any order.
+     *
+     * @throws IOException if a folder could not be created
+     */
+    public void createDirectories() throws IOException {
+        for (Path directory : directories) {
+            if (Files.notExists(directory)) {
+                logger.debug("Creating folder {}", directory);
+                Files.createDirectories(directory);
+            }
+        }
+    }
+
+    /**
+     * Delete temporary files left in the target by a copy that was killed before it could clean up after itself.
+     *
+     * @throws IOException if a folder could not be listed or a file could not be deleted
+     */
+    public void deleteStaleTempFiles() throws IOException {
+        for (Path directory : directories) {
+            try (var staleFiles = Files.newDirectoryStream(directory, "*" + ResilientFileCopier.TEMP_SUFFIX)) {
+                for (Path staleFile : staleFiles) {
+                    logger.info("Deleting stale temporary file {}", staleFile);
+                    Files.deleteIfExists(staleFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the largest file left to copy, or null if there are none left
+     */
+    public synchronized @Nullable FileTransfer pollLargest() {
+        return pending.pollFirst();
+    }
+
+    /**
+     * @return the smallest file left to copy, or null if there are none left
+     */
+    public synchronized @Nullable FileTransfer pollSmallest() {
+        return pending.pollLast();
+    }
+
+    /**
+     * Record bytes written for a file that is being copied.
+     */
+    public void bytesCopied(long bytes) {
+        copiedBytes.addAndGet(bytes);
+        remainingBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Record a file was copied completely.
+     */
+    public void fileCopied() {
+        copiedFiles.incrementAndGet();
+        remainingFiles.decrementAndGet();
+    }
+
+    /**
+     * Record a file could not be copied.
+     *
+     * @param transfer    the file that failed
+     * @param copiedBytes bytes already reported through {@link #bytesCopied(long)} for this file
+     */
+    public void fileFailed(FileTransfer transfer, long copiedBytes) {
+        failedFiles.add(transfer.source());
+        failedBytes.addAndGet(copiedBytes);
+        remainingBytes.addAndGet(-Math.max(0, transfer.size() - copiedBytes));
+        remainingFiles.decrementAndGet();
+    }
+
+    /**
+     * @return size of the whole game in bytes, including files that were already in the target
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return bytes of the game that are in the target so far, not counting the partial copies of failed files
+     */
+    public long getDoneBytes() {
+        return presentBytes + copiedBytes.get() - failedBytes.get();
+    }
+
+    /**
+     * @return bytes copied by this plan so far, not counting files that were already in the target. Includes the
+     * partial copies of failed files, since copying them took time all the same
+     */
+    public long getCopiedBytes() {
+        return copiedBytes.get();
+    }
+
+    /**
+     * @return files copied by this plan so far
+     */
+    public long getCopiedFiles() {
+        return copiedFiles.get();
+    }
+
+    public long getRemainingBytes() {
+        return Math.max(0, remainingBytes.get());
+    }
+
+    public long getRemainingFiles() {
+        return Math.max(0, remainingFiles.get());
+    }
+
+    /**
+     * @return files that could not be read or copied
+     */
+    public List<Path> getFailedFiles() {
+        return List.copyOf(failedFiles);
+    }
+}
@@ -0,0 +1,131 @@
+package io.jryan.lan.steam;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes {@link TransferPlan}s for sources that can hang, like SMB shares. Walking a folder can hang on a directory
+ * listing just like a read can, so a walk that visits nothing for {@link RetryPolicy#stallTimeout()} is abandoned and
+ * retried with backoff, the same way {@link ResilientFileCopier} treats copies.
+ */
+@ThreadSafe
+public class TransferPlanner implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(TransferPlanner.class);
+    private static final long MAX_POLL_MILLIS = 1000;
+
+    private final RetryPolicy policy;
+    private final Walker walker;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
+        var thread = new Thread(r, "transfer planner " + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TransferPlanner(RetryPolicy policy) {
+        this(policy, TransferPlan::of);
+    }
+
+    TransferPlanner(RetryPolicy policy, Walker walker) {
+        this.policy = policy;
+        this.walker = walker;
+    }
+
+    /**
+     * Plan copying {@code source} into {@code target} in the background.
+     *
+     * @return the plan, completes exceptionally with an {@link UncheckedIOException} if every attempt failed
+     */
+    public CompletableFuture<TransferPlan> planAsync(Path source, Path target) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return plan(source, target);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not plan download of " + source, e);
+            }
+        }, executorService);
+    }
+
+    /**
+     * Plan copying {@code source} into {@code target}, retrying as configured by the {@link RetryPolicy}.
+     *
+     * @throws InterruptedIOException if the calling thread was interrupted
+     * @throws IOException            the error of the last attempt if every attempt failed
+     */
+    public TransferPlan plan(Path source, Path target) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return planOnce(source, target);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= policy.maxAttempts()) {
+                    logger.error("Giving up planning {} after {} attempts", source, attempt);
+                    throw e;
+                }
+                var backoff = policy.backoff(attempt);
+                logger.warn("Attempt {} to plan {} failed, retrying in {}", attempt, source, backoff, e);
+                try {
+                    Thread.sleep(backoff.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting to retry planning " + source);
+                }
+            }
+        }
+    }
+
+    private TransferPlan planOnce(Path source, Path target) throws IOException {
+        var visited = new AtomicLong();
+        Future<TransferPlan> walk = executorService.submit(() -> walker.walk(source, target, visited));
+        var pollMillis = Math.max(1, Math.min(MAX_POLL_MILLIS, policy.stallTimeout().toMillis() / 4));
+        var lastVisited = 0L;
+        var lastProgressNanos = System.nanoTime();
+        try {
+            while (true) {
+                try {
+                    return walk.get(pollMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    var now = System.nanoTime();
+                    var currentVisited = visited.get();
+                    if (currentVisited != lastVisited) {
+                        lastVisited = currentVisited;
+                        lastProgressNanos = now;
+                    } else if (now - lastProgressNanos > policy.stallTimeout().toNanos()) {
+                        logger.warn("Planning {} visited nothing for {}, abandoning it", source, policy.stallTimeout());
+                        throw new IOException("Timed out planning " + source + " after no progress for " + policy.stallTimeout());
+                    }
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while planning " + source);
+                }
+            }
+        } finally {
+            // A directory listing doesn't block on interrupts, the walk just stops at the next file or folder
+            walk.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Walks the source, tests replace it to act like a hung share.
+     */
+    @FunctionalInterface
+    interface Walker {
+        TransferPlan walk(Path source, Path target, AtomicLong visited) throws IOException;
+    }
+}
@@ -2,7 +2,6 @@ open module io.jryan.lan.steam {
     requires javafx.graphics;
     requires javafx.fxml;
     requires javafx.controls;
-    requires javafx.swing;
     requires org.jetbrains.annotations;
     requires java.desktop;
     requires com.sun.jna;
@@ -0,0 +1,308 @@
+package io.jryan.lan.steam;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.spi.AbstractInterruptibleChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the copier against sources that act like a flaky share: failing to open, reading slowly, or hanging in a read
+ * that ignores interrupts like a blocked read on an SMB share does on Windows.
+ */
+class ResilientFileCopierTest {
+    private static final int FILE_SIZE = 2 * 1024 * 1024;
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path folder;
+
+    private final List<CountDownLatch> hungReads = new ArrayList<>();
+    private ResilientFileCopier copier;
+
+    @AfterEach
+    void tearDown() {
+        hungReads.forEach(CountDownLatch::countDown);
+        if (copier != null) {
+            copier.close();
+        }
+    }
+
+    private static RetryPolicy policy(int maxAttempts, Duration stallTimeout, Duration hedgeDelay) {
+        return policy(maxAttempts, stallTimeout, hedgeDelay, FILE_SIZE);
+    }
+
+    private static RetryPolicy policy(int maxAttempts, Duration stallTimeout, Duration hedgeDelay, long maxHedgeBytes) {
+        return new RetryPolicy(maxAttempts, Duration.ofMillis(10), Duration.ofMillis(50), stallTimeout, hedgeDelay, 4.0, maxHedgeBytes);
+    }
+
+    private Path source(String name) throws IOException {
+        var bytes = new byte[FILE_SIZE];
+        new Random(name.hashCode()).nextBytes(bytes);
+        return Files.write(folder.resolve(name), bytes);
+    }
+
+    private static ReadableByteChannel open(Path source) throws IOException {
+        return FileChannel.open(source, StandardOpenOption.READ);
+    }
+
+    /**
+     * A read that blocks until the test ends. Like {@link FileChannel} on Windows, interrupting the reading thread
+     * closes the channel on the interrupting thread, and closing waits for the blocked read to return.
+     */
+    private ReadableByteChannel hungChannel() {
+        var latch = new CountDownLatch(1);
+        hungReads.add(latch);
+        return new HungChannel(latch);
+    }
+
+    private static final class HungChannel extends AbstractInterruptibleChannel implements ReadableByteChannel {
+        private final CountDownLatch latch;
+
+        HungChannel(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            begin();
+            try {
+                awaitUninterruptibly(latch);
+                throw new IOException("Share went away");
+            } finally {
+                end(false);
+            }
+        }
+
+        @Override
+        protected void implCloseChannel() {
+            awaitUninterruptibly(latch);
+        }
+
+        private static void awaitUninterruptibly(CountDownLatch latch) {
+            boolean interrupted = false;
+            while (latch.getCount() > 0) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads 1 KiB every 20 ms, far slower than the local disk.
+     */
+    private static ReadableByteChannel slowChannel(Path source) throws IOException {
+        return slowChannel(source, Duration.ofDays(1));
+    }
+
+    /**
+     * Reads 1 KiB every 20 ms for {@code slowFor}, then as fast as the local disk.
+     */
+    private static ReadableByteChannel slowChannel(Path source, Duration slowFor) throws IOException {
+        var channel = open(source);
+        var slowUntil = System.nanoTime() + slowFor.toNanos();
+        return new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (System.nanoTime() - slowUntil > 0) {
+                    return channel.read(dst);
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new ClosedByInterruptException();
+                }
+                var limit = dst.limit();
+                dst.limit(Math.min(limit, dst.position() + 1024));
+                try {
+                    return channel.read(dst);
+                } finally {
+                    dst.limit(limit);
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (var files = Files.list(folder)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(ResilientFileCopier.TEMP_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void assertNoTempFilesEventually() throws Exception {
+        var deadline = System.nanoTime() + TEST_TIMEOUT.toNanos();
+        while (!tempFiles().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void copiesFileAndReportsProgress() throws Exception {
+        copier = new ResilientFileCopier(policy(1, Duration.ofSeconds(5), Duration.ofSeconds(5)), ResilientFileCopierTest::open);
+        var source = source("game.pak");
+        var target = folder.resolve("copy.pak");
+        var progress = new AtomicLong();
+
+        copier.copy(source, target, FILE_SIZE, progress::addAndGet);
+
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertEquals(FILE_SIZE, progress.get());
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void retriesWithBackoffUntilSourceCanBeRead() throws Exception {
+        var opens = new AtomicInteger();
+        copier = new ResilientFileCopier(policy(3, Duration.ofSeconds(5), Duration.ofSeconds(5)), source -> {
+            if (opens.incrementAndGet() < 3) {
+                throw new IOException("Share is busy");
+            }
+            return open(source);
+        });
+        var source = source("game.pak");
+        var target = folder.resolve("copy.pak");
+
+        copier.copy(source, target, FILE_SIZE, bytes -> {
+        });
+
+        assertEquals(3, opens.get());
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws Exception {
+        var opens = new AtomicInteger();
+        copier = new ResilientFileCopier(policy(3, Duration.ofSeconds(5), Duration.ofSeconds(5)), source -> {
+            opens.incrementAndGet();
+            throw new IOException("Share is gone");
+        });
+        var source = source("game.pak");
+        var target = folder.resolve("copy.pak");
+
+        var e = assertThrows(IOException.class, () -> copier.copy(source, target, FILE_SIZE, bytes -> {
+        }));
+
+        assertEquals("Share is gone", e.getMessage());
+        assertEquals(3, opens.get());
+        assertFalse(Files.exists(target));
+        assertEquals(List.of(), tempFiles());
+    }
+
+    @Test
+    void stallTimeoutRetriesWithoutWaitingForHungRead() throws Exception {
+        var opens = new AtomicInteger();
+        copier = new ResilientFileCopier(policy(2, Duration.ofMillis(200), Duration.ofSeconds(5)),
+                source -> opens.incrementAndGet() == 1 ? hungChannel() : open(source));
+        var source = source("game.pak");
+        var target = folder.resolve("copy.pak");
+
+        assertTimeoutPreemptively(TEST_TIMEOUT, () -> copier.copy(source, target, FILE_SIZE, bytes -> {
+        }));
+
+        assertEquals(2, opens.get());
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+        hungReads.forEach(CountDownLatch::countDown);
+        assertNoTempFilesEventually();
+    }
+
+    @Test
+    void stallTimeoutGivesUpAfterMaxAttempts() throws Exception {
+        copier = new ResilientFileCopier(policy(2, Duration.ofMillis(200), Duration.ofSeconds(5)), source -> hungChannel());
+        var source = source("game.pak");
+        var target = folder.resolve("copy.pak");
+
+        var e = assertTimeoutPreemptively(TEST_TIMEOUT, () -> assertThrows(IOException.class, () -> copier.copy(source, target, FILE_SIZE, bytes -> {
+        })));
+
+        assertTrue(e.getMessage().startsWith("Timed out"), e.getMessage());
+        assertFalse(Files.exists(target));
+        hungReads.forEach(CountDownLatch::countDown);
+        assertNoTempFilesEventually();
+    }
+
+    @Test
+    void hedgedAttemptWinsOverStraggler() throws Exception {
+        var straggler = source("straggler.pak");
+        var stragglerOpens = new AtomicInteger();
+        copier = new ResilientFileCopier(policy(1, Duration.ofSeconds(30), Duration.ofMillis(200)), source -> {
+            if (source.equals(straggler) && stragglerOpens.incrementAndGet() == 1) {
+                return slowChannel(source);
+            }
+            return open(source);
+        });
+        for (int i = 0; i < 3; i++) {
+            copier.copy(source("fast" + i + ".pak"), folder.resolve("fast" + i + ".copy"), FILE_SIZE, bytes -> {
+            });
+        }
+        var target = folder.resolve("straggler.copy");
+        var progress = new AtomicLong();
+
+        assertTimeoutPreemptively(TEST_TIMEOUT, () -> copier.copy(straggler, target, FILE_SIZE, progress::addAndGet));
+
+        assertEquals(2, stragglerOpens.get());
+        assertArrayEquals(Files.readAllBytes(straggler), Files.readAllBytes(target));
+        assertEquals(FILE_SIZE, progress.get());
+        assertNoTempFilesEventually();
+    }
+
+    @Test
+    void doesNotHedgeFilesOverMaxHedgeBytes() throws Exception {
+        var straggler = source("straggler.pak");
+        var stragglerOpens = new AtomicInteger();
+        copier = new ResilientFileCopier(policy(1, Duration.ofSeconds(30), Duration.ofMillis(200), FILE_SIZE - 1), source -> {
+            if (source.equals(straggler) && stragglerOpens.incrementAndGet() == 1) {
+                return slowChannel(source, Duration.ofSeconds(1));
+            }
+            return open(source);
+        });
+        for (int i = 0; i < 3; i++) {
+            copier.copy(source("fast" + i + ".pak"), folder.resolve("fast" + i + ".copy"), FILE_SIZE, bytes -> {
+            });
+        }
+        var target = folder.resolve("straggler.copy");
+
+        assertTimeoutPreemptively(TEST_TIMEOUT, () -> copier.copy(straggler, target, FILE_SIZE, bytes -> {
+        }));
+
+        assertEquals(1, stragglerOpens.get());
+        assertArrayEquals(Files.readAllBytes(straggler), Files.readAllBytes(target));
+        assertEquals(List.of(), tempFiles());
+    }
+}
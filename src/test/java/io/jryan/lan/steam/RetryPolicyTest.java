@@ -0,0 +1,38 @@
+package io.jryan.lan.steam;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RetryPolicyTest {
+
+    private static RetryPolicy policy(int maxAttempts, double hedgeSlowdownFactor) {
+        return policy(maxAttempts, hedgeSlowdownFactor, 1L << 20);
+    }
+
+    private static RetryPolicy policy(int maxAttempts, double hedgeSlowdownFactor, long maxHedgeBytes) {
+        return new RetryPolicy(maxAttempts, Duration.ofSeconds(1), Duration.ofSeconds(10),
+                Duration.ofSeconds(30), Duration.ofSeconds(10), hedgeSlowdownFactor, maxHedgeBytes);
+    }
+
+    @Test
+    void backoffDoublesUntilMax() {
+        var policy = policy(5, 4.0);
+        assertEquals(Duration.ofSeconds(1), policy.backoff(1));
+        assertEquals(Duration.ofSeconds(2), policy.backoff(2));
+        assertEquals(Duration.ofSeconds(4), policy.backoff(3));
+        assertEquals(Duration.ofSeconds(8), policy.backoff(4));
+        assertEquals(Duration.ofSeconds(10), policy.backoff(5));
+        assertEquals(Duration.ofSeconds(10), policy.backoff(1000));
+    }
+
+    @Test
+    void rejectsInvalidPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> policy(0, 4.0));
+        assertThrows(IllegalArgumentException.class, () -> policy(5, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> policy(5, 4.0, -1));
+    }
+}
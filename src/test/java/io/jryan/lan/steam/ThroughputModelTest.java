@@ -0,0 +1,130 @@
+package io.jryan.lan.steam;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThroughputModelTest {
+    private static final long MIB = 1024 * 1024;
+    private static final long NANOS_IN_SECOND = 1_000_000_000L;
+    private static final double DELTA = 1e-6;
+
+    /**
+     * Feeds the model progress that took exactly {@code secondsPerMib * MiB + secondsPerFile * files} each.
+     */
+    private static final class Clock {
+        private final ThroughputModel model;
+        private final double secondsPerMib;
+        private final double secondsPerFile;
+        private long nanos = 0;
+        private long bytes = 0;
+        private long files = 0;
+
+        Clock(ThroughputModel model, double secondsPerMib, double secondsPerFile) {
+            this.model = model;
+            this.secondsPerMib = secondsPerMib;
+            this.secondsPerFile = secondsPerFile;
+            model.sample(0, 0, 0);
+        }
+
+        void copy(long mib, long files) {
+            bytes += mib * MIB;
+            this.files += files;
+            nanos += Math.round((mib * secondsPerMib + files * secondsPerFile) * NANOS_IN_SECOND);
+            model.sample(bytes, this.files, nanos);
+        }
+
+        void wait(double seconds) {
+            nanos += Math.round(seconds * NANOS_IN_SECOND);
+            model.sample(bytes, files, nanos);
+        }
+    }
+
+    @Test
+    void emptyUntilSomethingWasCopied() {
+        var model = new ThroughputModel();
+        assertTrue(model.estimateSeconds(MIB, 1).isEmpty());
+        model.sample(0, 0, 0);
+        model.sample(0, 0, 10 * NANOS_IN_SECOND);
+        assertTrue(model.estimateSeconds(MIB, 1).isEmpty());
+        assertTrue(model.bytesPerSecond().isEmpty());
+        assertTrue(model.filesPerSecond().isEmpty());
+    }
+
+    @Test
+    void fitsKnownCoefficients() {
+        var model = new ThroughputModel();
+        var clock = new Clock(model, 0.5, 0.1);
+        clock.copy(10, 1);
+        clock.copy(2, 30);
+        clock.copy(5, 5);
+        clock.copy(1, 50);
+
+        assertEquals(10 * 0.5 + 20 * 0.1, model.estimateSeconds(10 * MIB, 20).orElseThrow(), DELTA);
+        assertEquals(2.0 * MIB, model.bytesPerSecond().orElseThrow(), 1e-3);
+        assertEquals(10.0, model.filesPerSecond().orElseThrow(), DELTA);
+    }
+
+    @Test
+    void fallsBackToBytesWhenFilesCantBeToldApart() {
+        var model = new ThroughputModel();
+        var clock = new Clock(model, 0.25, 0);
+        clock.copy(4, 0);
+        clock.copy(8, 0);
+
+        assertEquals(10 * 0.25, model.estimateSeconds(10 * MIB, 20).orElseThrow(), DELTA);
+        assertEquals(4.0 * MIB, model.bytesPerSecond().orElseThrow(), 1e-3);
+        assertTrue(model.filesPerSecond().isEmpty());
+    }
+
+    @Test
+    void followsSpeedChanges() {
+        var model = new ThroughputModel();
+        var clock = new Clock(model, 0.1, 0);
+        for (int i = 0; i < 10; i++) {
+            clock.copy(10, 0);
+        }
+        clock = new Clock(model, 1.0, 0);
+        for (int i = 0; i < 100; i++) {
+            clock.copy(10, 0);
+        }
+
+        var secondsPerMib = model.estimateSeconds(MIB, 0).orElseThrow();
+        assertTrue(secondsPerMib > 0.95, "old samples should have decayed away, was " + secondsPerMib);
+    }
+
+    @Test
+    void ignoresSamplesTooCloseTogether() {
+        var model = new ThroughputModel();
+        model.sample(0, 0, 0);
+        model.sample(MIB, 0, NANOS_IN_SECOND / 10); // too soon, counted with the next sample
+        model.sample(2 * MIB, 0, NANOS_IN_SECOND);
+
+        assertEquals(0.5, model.estimateSeconds(MIB, 0).orElseThrow(), DELTA);
+    }
+
+    @Test
+    void timeSpentStalledSlowsTheEstimate() {
+        var model = new ThroughputModel();
+        var clock = new Clock(model, 1.0, 0);
+        clock.copy(1, 0);
+        clock.wait(1.0); // stalled
+        clock.copy(1, 0);
+
+        // 1 second for the first MiB, decayed once, and 2 seconds for the second. Ignoring the stall would give 1
+        assertEquals((0.95 * 1 + 2) / (0.95 + 1), model.estimateSeconds(MIB, 0).orElseThrow(), DELTA);
+    }
+
+    @Test
+    void resetBaselineForgetsTimeSincePause() {
+        var model = new ThroughputModel();
+        var clock = new Clock(model, 1.0, 0);
+        clock.copy(1, 0);
+        model.resetBaseline();
+        clock.wait(100.0); // paused
+        clock.copy(1, 0);
+
+        assertEquals(1.0, model.estimateSeconds(MIB, 0).orElseThrow(), DELTA);
+    }
+}
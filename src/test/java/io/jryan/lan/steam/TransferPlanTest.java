@@ -0,0 +1,102 @@
+package io.jryan.lan.steam;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Plans a small game folder where part of the game is already in the target.
+ */
+class TransferPlanTest {
+    @TempDir
+    Path folder;
+
+    private Path source;
+    private Path target;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        source = Files.createDirectory(folder.resolve("source"));
+        target = Files.createDirectory(folder.resolve("target"));
+        write(source.resolve("game.exe"), 300);
+        write(source.resolve("data/big.pak"), 1000);
+        write(source.resolve("data/small.txt"), 10);
+        write(source.resolve("data/maps/level.map"), 100);
+        write(source.resolve("present.dll"), 50);
+        write(target.resolve("present.dll"), 50);
+    }
+
+    private static void write(Path file, int size) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[size]);
+    }
+
+    @Test
+    void plansFilesNotInTarget() throws IOException {
+        var plan = TransferPlan.of(source, target);
+
+        assertEquals(1460, plan.getTotalBytes());
+        assertEquals(50, plan.getDoneBytes());
+        assertEquals(0, plan.getCopiedBytes());
+        assertEquals(1410, plan.getRemainingBytes());
+        assertEquals(4, plan.getRemainingFiles());
+        assertEquals(List.of(), plan.getFailedFiles());
+    }
+
+    @Test
+    void pollsLargestAndSmallestFromEitherEnd() throws IOException {
+        var plan = TransferPlan.of(source, target);
+
+        var largest = plan.pollLargest();
+        var smallest = plan.pollSmallest();
+        var nextLargest = plan.pollLargest();
+        var nextSmallest = plan.pollSmallest();
+
+        assertEquals(new FileTransfer(source.resolve("data/big.pak"), target.resolve("data/big.pak"), 1000), largest);
+        assertEquals(new FileTransfer(source.resolve("data/small.txt"), target.resolve("data/small.txt"), 10), smallest);
+        assertEquals(source.resolve("game.exe"), nextLargest.source());
+        assertEquals(source.resolve("data/maps/level.map"), nextSmallest.source());
+        assertNull(plan.pollLargest());
+        assertNull(plan.pollSmallest());
+    }
+
+    @Test
+    void accountsForCopiedAndFailedFiles() throws IOException {
+        var plan = TransferPlan.of(source, target);
+
+        var copied = plan.pollLargest();
+        plan.bytesCopied(copied.size());
+        plan.fileCopied();
+        var failed = plan.pollLargest();
+        plan.bytesCopied(120);
+        plan.fileFailed(failed, 120);
+
+        assertEquals(1050, plan.getDoneBytes());
+        assertEquals(1120, plan.getCopiedBytes());
+        assertEquals(1, plan.getCopiedFiles());
+        assertEquals(110, plan.getRemainingBytes());
+        assertEquals(2, plan.getRemainingFiles());
+        assertEquals(List.of(failed.source()), plan.getFailedFiles());
+    }
+
+    @Test
+    void createsFoldersAndDeletesStaleTempFiles() throws IOException {
+        var plan = TransferPlan.of(source, target);
+        var stale = target.resolve("data/big.pak.7" + ResilientFileCopier.TEMP_SUFFIX);
+
+        plan.createDirectories();
+        Files.write(stale, new byte[5]);
+        plan.deleteStaleTempFiles();
+
+        assertTrue(Files.isDirectory(target.resolve("data/maps")));
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(target.resolve("present.dll")));
+    }
+}
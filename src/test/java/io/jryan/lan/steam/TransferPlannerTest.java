@@ -0,0 +1,102 @@
+package io.jryan.lan.steam;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the planner against walks that hang, like listing a folder on a share that went away.
+ */
+class TransferPlannerTest {
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path folder;
+
+    private final CountDownLatch hungWalks = new CountDownLatch(1);
+    private TransferPlanner planner;
+
+    @AfterEach
+    void tearDown() {
+        hungWalks.countDown();
+        if (planner != null) {
+            planner.close();
+        }
+    }
+
+    private static RetryPolicy policy(int maxAttempts, Duration stallTimeout) {
+        return new RetryPolicy(maxAttempts, Duration.ofMillis(10), Duration.ofMillis(50), stallTimeout, Duration.ofSeconds(5), 4.0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Blocks until the test ends, ignoring interrupts like a directory listing on a hung share does.
+     */
+    private TransferPlan hang() {
+        while (hungWalks.getCount() > 0) {
+            try {
+                hungWalks.await();
+            } catch (InterruptedException ignored) {
+            }
+        }
+        throw new IllegalStateException("Share went away");
+    }
+
+    @Test
+    void retriesHungWalk() throws Exception {
+        var source = Files.createDirectory(folder.resolve("source"));
+        Files.write(source.resolve("game.pak"), new byte[42]);
+        var walks = new AtomicInteger();
+        planner = new TransferPlanner(policy(2, Duration.ofMillis(200)), (from, to, visited) ->
+                walks.incrementAndGet() == 1 ? hang() : TransferPlan.of(from, to, visited));
+
+        var plan = assertTimeoutPreemptively(TEST_TIMEOUT, () -> planner.plan(source, folder.resolve("target")));
+
+        assertEquals(2, walks.get());
+        assertEquals(42, plan.getTotalBytes());
+    }
+
+    @Test
+    void givesUpOnHungWalkAfterMaxAttempts() {
+        var walks = new AtomicInteger();
+        planner = new TransferPlanner(policy(2, Duration.ofMillis(200)), (from, to, visited) -> {
+            walks.incrementAndGet();
+            return hang();
+        });
+
+        var e = assertTimeoutPreemptively(TEST_TIMEOUT, () -> assertThrows(IOException.class,
+                () -> planner.plan(folder.resolve("source"), folder.resolve("target"))));
+
+        assertTrue(e.getMessage().startsWith("Timed out"), e.getMessage());
+        assertEquals(2, walks.get());
+    }
+
+    @Test
+    void keepsWaitingForWalkThatMakesProgress() throws Exception {
+        planner = new TransferPlanner(policy(1, Duration.ofMillis(200)), (from, to, visited) -> {
+            for (int i = 0; i < 10; i++) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                visited.incrementAndGet();
+            }
+            return TransferPlan.of(from, to, visited);
+        });
+        var source = Files.createDirectory(folder.resolve("source"));
+
+        var plan = assertTimeoutPreemptively(TEST_TIMEOUT, () -> planner.plan(source, folder.resolve("target")));
+
+        assertEquals(0, plan.getTotalBytes());
+    }
+}